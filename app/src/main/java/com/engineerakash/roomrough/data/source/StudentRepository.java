@@ -241,7 +241,6 @@ public class StudentRepository implements StudentDataSource {
 
                         while (iterator.hasNext()) {
                             Student student = iterator.next().getValue();
-                            iterator.remove();
                             if (student.getId().equals(studentId))
                                 iterator.remove();
                         }
@@ -0,0 +1,278 @@
+package com.engineerakash.roomrough.data.source;
+
+import android.support.annotation.NonNull;
+
+import com.engineerakash.roomrough.data.Student;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * In-memory stand-in for a {@link StudentDataSource} which behaves like a slow or flaky backend.
+ * <p>
+ * Every call is run on the work executor, where it sleeps for the base latency plus an
+ * exponentially distributed jitter, fails with the given probability and otherwise applies the
+ * operation to the in-memory store. The result is delivered on the callback executor, the same
+ * way the app hands data source results back to its main thread.
+ * <p>
+ * Calls and injected failures are counted per method, so a test can tell which data source a
+ * repository call reached and whether a negative result was injected or a plain miss.
+ */
+public class FakeStudentDataSource implements StudentDataSource {
+
+    public static final String GET_STUDENTS = "getStudents";
+
+    public static final String GET_STUDENT = "getStudent";
+
+    public static final String SAVE_STUDENT = "saveStudent";
+
+    public static final String DELETE_ALL_STUDENT = "deleteAllStudent";
+
+    public static final String DELETE_STUDENT = "deleteStudent";
+
+    public static final String UPDATE_STUDENT_DETAILS = "updateStudentDetails";
+
+    public static final List<String> METHODS = Collections.unmodifiableList(Arrays.asList(
+            GET_STUDENTS, GET_STUDENT, SAVE_STUDENT, DELETE_ALL_STUDENT, DELETE_STUDENT,
+            UPDATE_STUDENT_DETAILS));
+
+    private final Map<String, Student> mStudents = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicInteger> mCallCounts = new HashMap<>();
+
+    private final Map<String, AtomicInteger> mInjectedFailureCounts = new HashMap<>();
+
+    private final Random mRandom = new Random();
+
+    private final Executor mWorkExecutor;
+
+    private final Executor mCallbackExecutor;
+
+    private final long mLatencyMillis;
+
+    private final long mMeanJitterMillis;
+
+    private final double mFailureRate;
+
+    /**
+     * @param workExecutor     runs the simulated work, use a single thread for a disk like source
+     * @param callbackExecutor delivers the results to the caller
+     * @param latencyMillis    fixed latency added to every call
+     * @param meanJitterMillis mean of the exponentially distributed extra latency
+     * @param failureRate      probability in [0, 1] that a call reports a failure
+     */
+    public FakeStudentDataSource(@NonNull Executor workExecutor, @NonNull Executor callbackExecutor,
+                                 long latencyMillis, long meanJitterMillis, double failureRate) {
+        checkArgument(latencyMillis >= 0 && meanJitterMillis >= 0);
+        checkArgument(failureRate >= 0 && failureRate <= 1);
+        mWorkExecutor = checkNotNull(workExecutor);
+        mCallbackExecutor = checkNotNull(callbackExecutor);
+        mLatencyMillis = latencyMillis;
+        mMeanJitterMillis = meanJitterMillis;
+        mFailureRate = failureRate;
+
+        for (String method : METHODS) {
+            mCallCounts.put(method, new AtomicInteger());
+            mInjectedFailureCounts.put(method, new AtomicInteger());
+        }
+    }
+
+    /**
+     * Puts the students straight into the store, without latency or failures.
+     */
+    public void addStudents(@NonNull List<Student> students) {
+        for (Student student : students) {
+            mStudents.put(student.getId(), student);
+        }
+    }
+
+    /**
+     * @return how many times the given method was called since the last {@link #resetCounts()}
+     */
+    public int getCallCount(@NonNull String method) {
+        return checkNotNull(mCallCounts.get(method)).get();
+    }
+
+    /**
+     * @return how many calls of the given method were failed on purpose since the last
+     * {@link #resetCounts()}
+     */
+    public int getInjectedFailureCount(@NonNull String method) {
+        return checkNotNull(mInjectedFailureCounts.get(method)).get();
+    }
+
+    public void resetCounts() {
+        for (String method : METHODS) {
+            mCallCounts.get(method).set(0);
+            mInjectedFailureCounts.get(method).set(0);
+        }
+    }
+
+    @Override
+    public void getStudents(@NonNull final LoadStudentsCallback loadStudentsCallback) {
+        mCallCounts.get(GET_STUDENTS).incrementAndGet();
+        mWorkExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final boolean failed = simulateCall(GET_STUDENTS);
+                final List<Student> students = new ArrayList<>(mStudents.values());
+                mCallbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (failed || students.isEmpty())
+                            loadStudentsCallback.onDataNotAvailable();
+                        else
+                            loadStudentsCallback.onStudentsLoaded(students);
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void getStudent(@NonNull final String studentId, @NonNull final GetStudentCallback getStudentCallback) {
+        mCallCounts.get(GET_STUDENT).incrementAndGet();
+        mWorkExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final boolean failed = simulateCall(GET_STUDENT);
+                final Student student = mStudents.get(studentId);
+                mCallbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (failed || student == null)
+                            getStudentCallback.onDataNotAvailable();
+                        else
+                            getStudentCallback.onStudentLoaded(student);
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void saveStudent(@NonNull final Student student, @NonNull final SaveStudentCallback saveStudentCallback) {
+        mCallCounts.get(SAVE_STUDENT).incrementAndGet();
+        mWorkExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final boolean failed = simulateCall(SAVE_STUDENT);
+                if (!failed)
+                    mStudents.put(student.getId(), student);
+                mCallbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (failed)
+                            saveStudentCallback.onFailedToSaveStudent();
+                        else
+                            saveStudentCallback.onStudentSavedSuccessfully();
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void deleteAllStudent(@NonNull final DeleteAllStudentCallback deleteAllStudentCallback) {
+        mCallCounts.get(DELETE_ALL_STUDENT).incrementAndGet();
+        mWorkExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final boolean failed = simulateCall(DELETE_ALL_STUDENT);
+                if (!failed)
+                    mStudents.clear();
+                mCallbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (failed)
+                            deleteAllStudentCallback.onFailedToDeleteAllStudent();
+                        else
+                            deleteAllStudentCallback.onAllStudentDeletedSuccessfully();
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void deleteStudent(@NonNull final String studentId, @NonNull final DeleteStudentCallback deleteStudentCallback) {
+        mCallCounts.get(DELETE_STUDENT).incrementAndGet();
+        mWorkExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final boolean failed = simulateCall(DELETE_STUDENT);
+                if (!failed)
+                    mStudents.remove(studentId);
+                mCallbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (failed)
+                            deleteStudentCallback.onFailedToDeleteStudent();
+                        else
+                            deleteStudentCallback.onStudentDeletedSuccessfully();
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void updateStudentDetails(@NonNull final Student student, @NonNull final UpdateStudentCallback updateStudentCallback) {
+        mCallCounts.get(UPDATE_STUDENT_DETAILS).incrementAndGet();
+        mWorkExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final boolean failed = simulateCall(UPDATE_STUDENT_DETAILS);
+                if (!failed)
+                    mStudents.put(student.getId(), student);
+                mCallbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (failed)
+                            updateStudentCallback.onFailedToUpdateStudentDetails();
+                        else
+                            updateStudentCallback.onStudentDetailsUpdatedSuccessfully();
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void refreshStudents() {
+        // Not required, the store is always up to date
+    }
+
+    /**
+     * Sleeps for the simulated latency of one call.
+     *
+     * @return true if the call should be reported as failed
+     */
+    private boolean simulateCall(String method) {
+        boolean failed = mRandom.nextDouble() < mFailureRate;
+        long jitterMillis = (long) (-Math.log(1 - mRandom.nextDouble()) * mMeanJitterMillis);
+        long delayMillis = mLatencyMillis + jitterMillis;
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed = true;
+            }
+        }
+        if (failed)
+            mInjectedFailureCounts.get(method).incrementAndGet();
+        return failed;
+    }
+}
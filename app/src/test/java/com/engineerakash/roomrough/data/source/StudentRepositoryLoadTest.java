@@ -0,0 +1,529 @@
+package com.engineerakash.roomrough.data.source;
+
+import com.engineerakash.roomrough.data.Student;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Load test for {@link StudentRepository} backed by a slow and flaky remote data source.
+ * <p>
+ * Many client threads drive a mixed read and write workload against the repository and the
+ * throughput and p50/p99/p999 latency of every operation is printed at the end. Like in the app,
+ * the repository itself is only ever touched from one "main" thread, data sources do their work
+ * on their own threads and post the results back to it.
+ * <p>
+ * The calls counted by the data sources are checked afterwards, so a read that skips the cache
+ * or a lookup that no longer falls back to the remote data source fails the test.
+ * <p>
+ * The test is skipped unless the {@value #LOAD_TEST_PROPERTY} system property is set, run it
+ * with {@code ./gradlew test -PloadTest}.
+ */
+public class StudentRepositoryLoadTest {
+
+    private static final String LOAD_TEST_PROPERTY = "loadTest";
+
+    private static final int CLIENT_THREADS = 16;
+
+    private static final int OPERATIONS_PER_THREAD = 250;
+
+    private static final int SEEDED_STUDENTS = 200;
+
+    private static final int DISPOSABLE_STUDENTS = 400;
+
+    private static final long REMOTE_LATENCY_MILLIS = 20;
+
+    private static final long REMOTE_MEAN_JITTER_MILLIS = 10;
+
+    private static final double REMOTE_FAILURE_RATE = 0.05;
+
+    private static final long OPERATION_TIMEOUT_SECONDS = 10;
+
+    private static final int WARM_UP_ATTEMPTS = 20;
+
+    private static final long RANDOM_SEED = 42;
+
+    private ExecutorService mMainExecutor;
+
+    private ExecutorService mDiskExecutor;
+
+    private ExecutorService mNetworkExecutor;
+
+    private FakeStudentDataSource mRemoteDataSource;
+
+    private FakeStudentDataSource mLocalDataSource;
+
+    private StudentRepository mStudentRepository;
+
+    /**
+     * Students which are read and updated but never deleted, so they stay in the cache.
+     */
+    private final List<String> mSeededStudentIds = new ArrayList<>();
+
+    /**
+     * Students which are only there to be deleted.
+     */
+    private final List<String> mDisposableStudentIds = new ArrayList<>();
+
+    private final AtomicInteger mNewStudentCount = new AtomicInteger();
+
+    private final AtomicInteger mDeletedStudentCount = new AtomicInteger();
+
+    @BeforeClass
+    public static void checkLoadTestEnabled() {
+        assumeTrue("Set -P" + LOAD_TEST_PROPERTY + " to run the load test",
+                Boolean.getBoolean(LOAD_TEST_PROPERTY));
+    }
+
+    @Before
+    public void setupStudentRepository() {
+        mMainExecutor = Executors.newSingleThreadExecutor();
+        mDiskExecutor = Executors.newSingleThreadExecutor();
+        mNetworkExecutor = Executors.newCachedThreadPool();
+
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < SEEDED_STUDENTS; i++) {
+            Student student = new Student("Student " + i, i + 1);
+            students.add(student);
+            mSeededStudentIds.add(student.getId());
+        }
+        for (int i = 0; i < DISPOSABLE_STUDENTS; i++) {
+            Student student = new Student("Disposable Student " + i);
+            students.add(student);
+            mDisposableStudentIds.add(student.getId());
+        }
+
+        mRemoteDataSource = new FakeStudentDataSource(mNetworkExecutor, mMainExecutor,
+                REMOTE_LATENCY_MILLIS, REMOTE_MEAN_JITTER_MILLIS, REMOTE_FAILURE_RATE);
+        mRemoteDataSource.addStudents(students);
+
+        // The local data source starts empty, like on the first launch of the app
+        mLocalDataSource = new FakeStudentDataSource(mDiskExecutor, mMainExecutor, 0, 0, 0);
+
+        StudentRepository.destroyInstance();
+        mStudentRepository = StudentRepository.getInstance(mRemoteDataSource, mLocalDataSource);
+    }
+
+    @After
+    public void destroyStudentRepository() {
+        StudentRepository.destroyInstance();
+        mMainExecutor.shutdownNow();
+        mDiskExecutor.shutdownNow();
+        mNetworkExecutor.shutdownNow();
+    }
+
+    @Test
+    public void mixedWorkload_reportsLatencyPerOperation() throws Exception {
+        warmUpCache();
+
+        // deleteAllStudent is left out on purpose: it empties both data sources, so everything
+        // after it would measure an empty repository instead of a steady state.
+        Operation getStudents = new GetStudents();
+        Operation getStudent = new GetStudent();
+        Operation getMissingStudent = new GetMissingStudent();
+        Operation refreshStudents = new RefreshStudents();
+        final Map<Operation, Integer> weights = new LinkedHashMap<>();
+        weights.put(getStudents, 38);
+        weights.put(getStudent, 35);
+        weights.put(getMissingStudent, 5);
+        weights.put(new SaveStudent(), 10);
+        weights.put(new UpdateStudentDetails(), 7);
+        weights.put(new DeleteStudent(), 4);
+        weights.put(refreshStudents, 1);
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENT_THREADS);
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(clients);
+        long startNanos = System.nanoTime();
+
+        for (int i = 0; i < CLIENT_THREADS; i++) {
+            final Random random = new Random(RANDOM_SEED + i);
+            completionService.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int j = 0; j < OPERATIONS_PER_THREAD; j++) {
+                        pickOperation(weights, random).execute(random);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        try {
+            // Stop at the first client that fails instead of letting the others run to the end
+            for (int i = 0; i < CLIENT_THREADS; i++) {
+                try {
+                    completionService.take().get();
+                } catch (ExecutionException e) {
+                    fail(e.getCause().toString());
+                }
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        printReport(weights.keySet(), elapsedNanos);
+
+        int completed = 0;
+        for (Operation operation : weights.keySet()) {
+            completed += operation.count();
+        }
+        assertEquals(CLIENT_THREADS * OPERATIONS_PER_THREAD, completed);
+
+        // With a warm cache getStudents only reaches the remote data source while the cache is
+        // dirty. Each refresh lets at most one in flight call per client through, plus one more
+        // for every failed remote fetch.
+        assertEquals("getStudents was not served from cache",
+                0, mLocalDataSource.getCallCount(FakeStudentDataSource.GET_STUDENTS));
+        int remoteGetStudentsLimit = refreshStudents.count() * CLIENT_THREADS
+                + mRemoteDataSource.getInjectedFailureCount(FakeStudentDataSource.GET_STUDENTS);
+        assertTrue("getStudents reached the remote data source "
+                        + mRemoteDataSource.getCallCount(FakeStudentDataSource.GET_STUDENTS)
+                        + " times, expected at most " + remoteGetStudentsLimit,
+                mRemoteDataSource.getCallCount(FakeStudentDataSource.GET_STUDENTS)
+                        <= remoteGetStudentsLimit);
+
+        // Cached students never reach a data source, so every getStudent call the data sources
+        // see comes from a missing student, which has to go to local and then to remote once.
+        assertEquals("getStudent reached the local data source for a cached student or skipped it "
+                        + "for a missing one",
+                getMissingStudent.count(),
+                mLocalDataSource.getCallCount(FakeStudentDataSource.GET_STUDENT));
+        assertEquals("getStudent did not fall back to the remote data source exactly once per "
+                        + "missing student",
+                getMissingStudent.count(),
+                mRemoteDataSource.getCallCount(FakeStudentDataSource.GET_STUDENT));
+    }
+
+    /**
+     * Loads all students into the cache and resets the call counts of the data sources.
+     */
+    private void warmUpCache() throws Exception {
+        Operation warmUp = new GetStudents();
+        for (int i = 0; i < WARM_UP_ATTEMPTS && warmUp.mUnavailable.get() == warmUp.count(); i++) {
+            warmUp.execute(new Random(RANDOM_SEED));
+        }
+        assertTrue("Could not load the students to warm up the cache",
+                warmUp.mUnavailable.get() < warmUp.count());
+
+        mRemoteDataSource.resetCounts();
+        mLocalDataSource.resetCounts();
+    }
+
+    private static Operation pickOperation(Map<Operation, Integer> weights, Random random) {
+        int total = 0;
+        for (int weight : weights.values()) {
+            total += weight;
+        }
+
+        int pick = random.nextInt(total);
+        for (Map.Entry<Operation, Integer> entry : weights.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0)
+                return entry.getKey();
+        }
+        throw new AssertionError();
+    }
+
+    private void printReport(Iterable<Operation> operations, long elapsedNanos) {
+        double elapsedSeconds = elapsedNanos / 1e9;
+        int total = 0;
+
+        // "unavailable" counts onDataNotAvailable and onFailed callbacks of the repository, which
+        // includes students that are simply not there. Injected failures are listed per data
+        // source below.
+        System.out.println(String.format("%-22s %7s %8s %11s %8s %8s %8s %8s",
+                "operation", "count", "ops/s", "unavailable", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        for (Operation operation : operations) {
+            total += operation.count();
+            System.out.println(String.format("%-22s %7d %8.1f %11d %8.2f %8.2f %8.2f %8.2f",
+                    operation.mName,
+                    operation.count(),
+                    operation.count() / elapsedSeconds,
+                    operation.mUnavailable.get(),
+                    operation.percentileMillis(0.5),
+                    operation.percentileMillis(0.99),
+                    operation.percentileMillis(0.999),
+                    operation.percentileMillis(1)));
+        }
+        System.out.println(String.format("%d operations in %.2f s, %.1f ops/s",
+                total, elapsedSeconds, total / elapsedSeconds));
+
+        System.out.println();
+        System.out.println(String.format("%-29s %7s %8s", "data source call", "calls", "injected"));
+        printDataSourceCalls("remote", mRemoteDataSource);
+        printDataSourceCalls("local", mLocalDataSource);
+    }
+
+    private static void printDataSourceCalls(String name, FakeStudentDataSource dataSource) {
+        for (String method : FakeStudentDataSource.METHODS) {
+            System.out.println(String.format("%-29s %7d %8d",
+                    name + " " + method,
+                    dataSource.getCallCount(method),
+                    dataSource.getInjectedFailureCount(method)));
+        }
+    }
+
+    /**
+     * One kind of repository call together with the latencies recorded for it.
+     */
+    private abstract class Operation {
+
+        final String mName;
+
+        final AtomicInteger mUnavailable = new AtomicInteger();
+
+        private long[] mLatencies = new long[64];
+
+        private int mCount;
+
+        Operation(String name) {
+            mName = name;
+        }
+
+        /**
+         * Starts the call on the main thread, must end by calling {@link Result#done(boolean)}.
+         */
+        abstract void start(Random random, Result result);
+
+        void execute(final Random random) throws InterruptedException, TimeoutException {
+            final Result result = new Result();
+            long startNanos = System.nanoTime();
+
+            mMainExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    start(random, result);
+                }
+            });
+
+            if (!result.mDone.await(OPERATION_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                throw new TimeoutException(mName + " did not call back within "
+                        + OPERATION_TIMEOUT_SECONDS + " s");
+
+            if (!result.mSuccess)
+                mUnavailable.incrementAndGet();
+            record(System.nanoTime() - startNanos);
+        }
+
+        synchronized int count() {
+            return mCount;
+        }
+
+        synchronized double percentileMillis(double percentile) {
+            if (mCount == 0)
+                return 0;
+            long[] sorted = Arrays.copyOf(mLatencies, mCount);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile * mCount);
+            return sorted[Math.max(rank, 1) - 1] / 1e6;
+        }
+
+        private synchronized void record(long latencyNanos) {
+            if (mCount == mLatencies.length)
+                mLatencies = Arrays.copyOf(mLatencies, mCount * 2);
+            mLatencies[mCount++] = latencyNanos;
+        }
+    }
+
+    private static class Result {
+
+        final CountDownLatch mDone = new CountDownLatch(1);
+
+        volatile boolean mSuccess;
+
+        void done(boolean success) {
+            mSuccess = success;
+            mDone.countDown();
+        }
+    }
+
+    private class GetStudents extends Operation {
+
+        GetStudents() {
+            super("getStudents");
+        }
+
+        GetStudents(String name) {
+            super(name);
+        }
+
+        @Override
+        void start(Random random, final Result result) {
+            mStudentRepository.getStudents(new StudentDataSource.LoadStudentsCallback() {
+                @Override
+                public void onStudentsLoaded(List<Student> students) {
+                    result.done(true);
+                }
+
+                @Override
+                public void onDataNotAvailable() {
+                    result.done(false);
+                }
+            });
+        }
+    }
+
+    private class GetStudent extends Operation {
+
+        GetStudent() {
+            super("getStudent");
+        }
+
+        GetStudent(String name) {
+            super(name);
+        }
+
+        String pickStudentId(Random random) {
+            return mSeededStudentIds.get(random.nextInt(mSeededStudentIds.size()));
+        }
+
+        @Override
+        void start(Random random, final Result result) {
+            mStudentRepository.getStudent(pickStudentId(random), new StudentDataSource.GetStudentCallback() {
+                @Override
+                public void onStudentLoaded(Student student) {
+                    result.done(true);
+                }
+
+                @Override
+                public void onDataNotAvailable() {
+                    result.done(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Looks up a student no data source knows, so it always falls back from local to remote.
+     */
+    private class GetMissingStudent extends GetStudent {
+
+        GetMissingStudent() {
+            super("getStudent (missing)");
+        }
+
+        @Override
+        String pickStudentId(Random random) {
+            return UUID.randomUUID().toString();
+        }
+    }
+
+    private class SaveStudent extends Operation {
+
+        SaveStudent() {
+            super("saveStudent");
+        }
+
+        @Override
+        void start(Random random, final Result result) {
+            int number = mNewStudentCount.incrementAndGet();
+            Student student = new Student("New Student " + number, SEEDED_STUDENTS + number);
+            mStudentRepository.saveStudent(student, new StudentDataSource.SaveStudentCallback() {
+                @Override
+                public void onStudentSavedSuccessfully() {
+                    result.done(true);
+                }
+
+                @Override
+                public void onFailedToSaveStudent() {
+                    result.done(false);
+                }
+            });
+        }
+    }
+
+    private class UpdateStudentDetails extends Operation {
+
+        UpdateStudentDetails() {
+            super("updateStudentDetails");
+        }
+
+        @Override
+        void start(Random random, final Result result) {
+            int index = random.nextInt(mSeededStudentIds.size());
+            Student student = new Student(mSeededStudentIds.get(index), "Updated Student " + index,
+                    index + 1, null, null);
+            mStudentRepository.updateStudentDetails(student, new StudentDataSource.UpdateStudentCallback() {
+                @Override
+                public void onStudentDetailsUpdatedSuccessfully() {
+                    result.done(true);
+                }
+
+                @Override
+                public void onFailedToUpdateStudentDetails() {
+                    result.done(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Deletes each disposable student once, and students nobody knows once they are used up.
+     */
+    private class DeleteStudent extends Operation {
+
+        DeleteStudent() {
+            super("deleteStudent");
+        }
+
+        @Override
+        void start(Random random, final Result result) {
+            int index = mDeletedStudentCount.getAndIncrement();
+            String studentId = index < mDisposableStudentIds.size()
+                    ? mDisposableStudentIds.get(index) : UUID.randomUUID().toString();
+            mStudentRepository.deleteStudent(studentId, new StudentDataSource.DeleteStudentCallback() {
+                @Override
+                public void onStudentDeletedSuccessfully() {
+                    result.done(true);
+                }
+
+                @Override
+                public void onFailedToDeleteStudent() {
+                    result.done(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Marks the cache dirty and reloads, the path taken on pull to refresh.
+     */
+    private class RefreshStudents extends GetStudents {
+
+        RefreshStudents() {
+            super("refreshStudents");
+        }
+
+        @Override
+        void start(Random random, Result result) {
+            mStudentRepository.refreshStudents();
+            super.start(random, result);
+        }
+    }
+}